@@ -0,0 +1,88 @@
+package com.itsJamilAhmed.samples.alibaba.nlp;
+
+import java.lang.management.ManagementFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures what the per-request log calls of the replier and requestor cost the calling thread, in time and in bytes allocated.
+ * Run through the benchmarkLoggingSync and benchmarkLoggingAsync Gradle tasks to compare the synchronous and async logger setups.
+ */
+
+public class LoggingBenchmark {
+
+	final static int DEFAULT_ITERATIONS = 200000;
+	final static int WARMUP_ITERATIONS = 50000;
+	final static int LOG_SAMPLE_RATE = 100;
+
+	final static Logger logger = LoggerFactory.getLogger(LoggingBenchmark.class);
+
+	// A few different texts, so nothing can be folded into a constant
+	final static String[] REQUESTS = { "Hello world", "Test Message", "The quick brown fox jumps over the lazy dog", "Good morning" };
+	final static String[] RESPONSES = { "你好世界", "测试消息", "敏捷的棕色狐狸跳过了懒狗", "早上好" };
+	static String destination = "nlp.translation.requests";
+
+	interface LogCall {
+		void log(int i);
+	}
+
+	private static void measure(String name, int iterations, LogCall call) {
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			call.log(i);
+		}
+
+		long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+		long startNanos = System.nanoTime();
+
+		for (int i = 0; i < iterations; i++) {
+			call.log(i);
+		}
+
+		long elapsedNanos = System.nanoTime() - startNanos;
+		long allocatedBytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+		System.out.printf("%-48s %10.1f ns/op %10.1f B/op\n", name, (double) elapsedNanos / iterations, (double) allocatedBytes / iterations);
+	}
+
+	public static void main(String... args) {
+
+		String label = args.length > 0 ? args[0] : "";
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ITERATIONS;
+
+		System.out.printf("### Logging benchmark: %s loggers, %d calls per case ###\n", label, iterations);
+
+		// The requestor's debug line, with debug level disabled
+		measure("debug off, concatenated", iterations, i ->
+			logger.debug("Sending request '" + REQUESTS[i & 3] + "' to destination '" + destination + "'..."));
+
+		measure("debug off, parameterized", iterations, i ->
+			logger.debug("Sending request '{}' to destination '{}'...", REQUESTS[i & 3], destination));
+
+		// The replier's info line for every processed request
+		measure("info, concatenated", iterations, i ->
+			logger.info("Processed a request: '" + REQUESTS[i & 3] + "' -> '" + RESPONSES[i & 3] + "'"));
+
+		measure("info, parameterized", iterations, i ->
+			logger.info("Processed a request: '{}' -> '{}'", REQUESTS[i & 3], RESPONSES[i & 3]));
+
+		// The same line as it was, with three parameters: past two, SLF4J takes them as an array allocated on every call
+		measure("info, parameterized, 3 parameters", iterations, i ->
+			logger.info("Processed a request on destination '{}': '{}' -> '{}'", destination, REQUESTS[i & 3], RESPONSES[i & 3]));
+
+		final RequestLogSampler sampler = new RequestLogSampler(LOG_SAMPLE_RATE);
+		measure("info, parameterized, sampled 1 in " + LOG_SAMPLE_RATE, iterations, i -> {
+			if (sampler.shouldLog()) {
+				logger.info("Processed a request: '{}' -> '{}'", REQUESTS[i & 3], RESPONSES[i & 3]);
+			}
+		});
+
+		// Let any queued events drain before exiting
+		LogManager.shutdown();
+	}
+}
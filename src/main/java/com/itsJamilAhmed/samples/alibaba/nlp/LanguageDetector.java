@@ -0,0 +1,113 @@
+package com.itsJamilAhmed.samples.alibaba.nlp;
+
+/**
+ * Decides which way request text needs translating before any call is made to the Machine Translation service.
+ * A single pass over the code points, without regex or allocation, so it is cheap enough to run on every request.
+ * Only English and Chinese are told apart here; text in any other script is left for the translation service to detect.
+ */
+
+final class LanguageDetector {
+
+	enum Language {
+		ENGLISH("en"),	// Translate to Chinese
+		CHINESE("zh"),	// Translate to English
+		OTHER("auto"),	// Letters of some other script (e.g. Japanese, Korean, Cyrillic). Left to the translation service to detect.
+		NONE(null);		// Nothing to translate (e.g. numbers, punctuation, symbols). Pass through as is.
+		
+		// Language code as used by the Machine Translation service
+		final String code;
+		
+		Language(String code) {
+			this.code = code;
+		}
+	}
+
+	private LanguageDetector() {
+	}
+
+	/**
+	 * Mixed text goes by whichever language has more words in it. A run of letters of the same script counts as one word,
+	 * except for Chinese, which has no spaces between words: there every two characters count as a word, as most Chinese words
+	 * are one or two characters long. Chinese characters in text that also has Japanese kana are taken as Japanese.
+	 * A tie between English and Chinese goes to Chinese, as a Latin name or brand inside Chinese text is the common mixed case
+	 * (e.g. "iPhone 手机"). Text with no letters at all is NONE.
+	 */
+	static Language detect(CharSequence text) {
+
+		int chineseCount = 0;
+		int englishWordCount = 0;
+		int otherWordCount = 0;
+		boolean hasKana = false;
+		Character.UnicodeScript wordScript = null;
+
+		int length = text.length();
+		int i = 0;
+		while (i < length) {
+			int codePoint = Character.codePointAt(text, i);
+			i += Character.charCount(codePoint);
+
+			if (isLatinLetter(codePoint)) {
+				if (wordScript != Character.UnicodeScript.LATIN) {
+					englishWordCount++;
+					wordScript = Character.UnicodeScript.LATIN;
+				}
+				continue;
+			}
+			if (isChinese(codePoint)) {
+				chineseCount++;
+				wordScript = Character.UnicodeScript.HAN;
+				continue;
+			}
+			if (codePoint < 0x80 || !Character.isLetter(codePoint)) {
+				// Digits, spaces, punctuation and symbols end a word
+				wordScript = null;
+				continue;
+			}
+
+			Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+			if (script == Character.UnicodeScript.HIRAGANA || script == Character.UnicodeScript.KATAKANA) {
+				hasKana = true;
+			}
+			if (script != wordScript) {
+				otherWordCount++;
+				wordScript = script;
+			}
+		}
+
+		int chineseWordCount = (chineseCount + 1) / 2;
+		if (hasKana) {
+			// Japanese written with kanji
+			otherWordCount += chineseWordCount;
+			chineseWordCount = 0;
+		}
+
+		if (chineseWordCount == 0 && englishWordCount == 0 && otherWordCount == 0) {
+			return Language.NONE;
+		}
+		if (otherWordCount > englishWordCount && otherWordCount > chineseWordCount) {
+			return Language.OTHER;
+		}
+		return chineseWordCount > 0 && chineseWordCount >= englishWordCount ? Language.CHINESE : Language.ENGLISH;
+	}
+
+	private static boolean isLatinLetter(int codePoint) {
+		if (codePoint < 0x80) {
+			// Fast path for plain ASCII
+			int lower = codePoint | 0x20;
+			return lower >= 'a' && lower <= 'z';
+		}
+		return Character.isLetter(codePoint) && Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.LATIN;
+	}
+
+	private static boolean isChinese(int codePoint) {
+		if (codePoint < 0x2E80) {
+			// Nothing below the CJK radicals block is Chinese
+			return false;
+		}
+		if (codePoint >= 0x4E00 && codePoint <= 0x9FFF) {
+			// Fast path for CJK Unified Ideographs, by far the most common
+			return true;
+		}
+		return Character.UnicodeScript.of(codePoint) == Character.UnicodeScript.HAN;
+	}
+}
@@ -12,44 +12,49 @@ import com.alibaba.fastjson.JSONObject;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 class MachineTranslationService {
 	
 	final int REQUEST_OK_CODE = 200;
 	private DefaultProfile profile;
 	private IAcsClient client;
-	private TranslateGeneralRequest generalRequestToEnglish;
-	private TranslateGeneralRequest generalRequestToChinese;
-	private TranslateGeneralResponse generalResponse;
 	private boolean isSimulation = false;
 	
+	// Registry of the language pairs this service will translate, each as "source:target" (e.g. "en:zh")
+	private Set<String> languagePairs;
+	
+	// Used when the properties file does not have a language-pairs entry
+	final static String DEFAULT_LANGUAGE_PAIRS = "en:zh,zh:en";
+	
+	// Source language code asking the service to detect the language itself
+	final static String AUTO_DETECT_LANGUAGE = "auto";
+	
 	final String SIMULATED_ENGLISH = "Test Message";
 	final String SIMULATED_CHINESE = "测试消息";
 	
 	public MachineTranslationService(String serviceRegion, String accessKeyId, String accessKeySecret) throws Exception {
-				
+		this(serviceRegion, accessKeyId, accessKeySecret, DEFAULT_LANGUAGE_PAIRS);
+	}
+	
+	public MachineTranslationService(String serviceRegion, String accessKeyId, String accessKeySecret, String languagePairs) throws Exception {
+		
 		profile = DefaultProfile.getProfile(serviceRegion,accessKeyId,accessKeySecret); 
 		client = new DefaultAcsClient(profile);
-
 		
-		// Keep a request object ready to go for each translation direction
-		generalRequestToEnglish = new TranslateGeneralRequest();
-		generalRequestToEnglish.setSourceLanguage("zh");	// From Chinese
-		generalRequestToEnglish.setTargetLanguage("en");	// To English
-		generalRequestToEnglish.setMethod(MethodType.POST);  
-		generalRequestToEnglish.setFormatType("text"); 
-
-		generalRequestToChinese = new TranslateGeneralRequest();
-		generalRequestToChinese.setSourceLanguage("en");	// From English
-		generalRequestToChinese.setTargetLanguage("zh");	// To Chinese
-		generalRequestToChinese.setMethod(MethodType.POST);  
-		generalRequestToChinese.setFormatType("text"); 
-		
-		selfTest();	// Will trigger an exception on creation if the parameters were invalid
- 
+		this.languagePairs = parseLanguagePairs(languagePairs);
+		
+		// Note: No network call is made here. Call selfTest() to find out if the parameters were invalid.
+		
 	}
 	
 	public MachineTranslationService(boolean simulationMode) throws Exception {
+		this(simulationMode, DEFAULT_LANGUAGE_PAIRS);
+	}
+	
+	public MachineTranslationService(boolean simulationMode, String languagePairs) throws Exception {
 		
 		// Will only accept this to be true, handle the false a better way?
 		if (simulationMode)
@@ -61,12 +66,60 @@ class MachineTranslationService {
 			throw new Exception ("This constructor can only be called with value true.");
 		}
 		
+		this.languagePairs = parseLanguagePairs(languagePairs);
+	}
+	
+	/**
+	 * Parse a comma separated list of "source:target" language codes, e.g. "en:zh,zh:en,en:ja"
+	 */
+	private static Set<String> parseLanguagePairs(String languagePairs) throws Exception {
+		
+		Set<String> pairs = new LinkedHashSet<String>();
+		
+		for (String pair : languagePairs.split(",")) {
+			String[] languages = pair.trim().split(":");
+			if (languages.length != 2 || languages[0].trim().isEmpty() || languages[1].trim().isEmpty()) {
+				throw new Exception("Invalid language pair '" + pair.trim() + "'. Expecting the form source:target, e.g. en:zh");
+			}
+			pairs.add(languages[0].trim() + ":" + languages[1].trim());
+		}
+		
+		return Collections.unmodifiableSet(pairs);
+	}
+	
+	Set<String> getLanguagePairs() {
+		return languagePairs;
 	}
 	
-	private void selfTest () throws Exception {
-		// Need to try out a request to make sure the parameters are good.
+	/**
+	 * A source language of "auto" leaves the service to detect it, and is allowed for any configured target language.
+	 */
+	boolean supports(String sourceLanguage, String targetLanguage) {
+		if (AUTO_DETECT_LANGUAGE.equals(sourceLanguage)) {
+			for (String pair : languagePairs) {
+				if (pair.endsWith(":" + targetLanguage)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return languagePairs.contains(sourceLanguage + ":" + targetLanguage);
+	}
+	
+	/**
+	 * Make one real translation request. Will throw an exception if the parameters were invalid.
+	 * Kept out of the constructor so the caller can run it alongside other startup work.
+	 */
+	void selfTest () throws Exception {
+		
+		if (this.isSimulation) {
+			return;
+		}
+		
+		// Need to try out a request to make sure the parameters are good. Use the first configured pair, whatever it is.
+		String[] firstPair = languagePairs.iterator().next().split(":");
 		try {
-			translateEnglishToChinese("hello");
+			translate("hello", firstPair[0], firstPair[1]);
 		} catch (Exception e) {
 			throw new Exception(e.getMessage());
 		}
@@ -77,48 +130,89 @@ class MachineTranslationService {
 		
 	}
 	
-	public String translateChineseToEnglish (String translationText) throws Exception {
-
-		if (this.isSimulation) {
-			return SIMULATED_ENGLISH;
-		}
+	/**
+	 * Load and initialise the classes used to encode a request and process a response, without making any network call.
+	 * Done in simulation mode too, so an AppCDS training run in simulation mode still archives the SDK classes.
+	 */
+	void warmUp () {
 		
-		String translationResponse = "";
 		try {
-			generalRequestToEnglish.setSourceText(URLEncoder.encode(translationText,"UTF-8"));
-			generalResponse = client.getAcsResponse(generalRequestToEnglish);  
-			JSONObject translationResponseJSON = (JSONObject) JSONObject.toJSON(generalResponse);
+			// Build the request as translate() would, but don't send it
+			TranslateGeneralRequest generalRequest = new TranslateGeneralRequest();
+			generalRequest.setSourceLanguage("en");
+			generalRequest.setTargetLanguage("zh");
+			generalRequest.setMethod(MethodType.POST);
+			generalRequest.setFormatType("text");
+			generalRequest.setSourceText(URLEncoder.encode("warm up", "UTF-8"));
+			JSONObject.toJSON(new TranslateGeneralResponse());
 			
-			if (translationResponseJSON.getInteger("code") == REQUEST_OK_CODE) {
-				// Request was OK
-				translationResponse = translationResponseJSON.getJSONObject("data").getString("translated");
+			if (this.isSimulation) {
+				// No client was made, so load its classes here
+				Class.forName(DefaultProfile.class.getName());
+				Class.forName(DefaultAcsClient.class.getName());
 			}
-			else {
-				// Not seen one of these yet so not sure what it will contain...
-				throw new Exception("Received a non-OK response from SDK: " + translationResponseJSON.toString());
-			}
-			
-		} catch (UnsupportedEncodingException e) {
-			// Do nothing
-		} catch (ServerException se) {
-			throw new Exception("ServerException from Alibaba SDK: " + se.getMessage());
-		} catch (ClientException ce) {
-			// Pass it up to caller
-			throw new Exception("ClientException from Alibaba SDK: " + ce.getMessage());
+		} catch (Exception e) {
+			// Only an optimisation, the first real request will do the same work anyway
 		}
+	}
+	
+	/**
+	 * Target language for a request that did not name one. As before, Chinese for English text and English for Chinese text,
+	 * when that pair is configured. Otherwise the first configured pair from the source language. Null if there is none.
+	 */
+	String defaultTargetLanguage (String sourceLanguage) {
 		
-		return translationResponse;
+		String preferred = "zh".equals(sourceLanguage) ? "en" : "zh";
+		if (supports(sourceLanguage, preferred)) {
+			return preferred;
+		}
+		for (String pair : languagePairs) {
+			String[] languages = pair.split(":");
+			if (AUTO_DETECT_LANGUAGE.equals(sourceLanguage) || languages[0].equals(sourceLanguage)) {
+				return languages[1];
+			}
+		}
+		return null;
+	}
+	
+	public String translateChineseToEnglish (String translationText) throws Exception {
+		return translate(translationText, "zh", "en");
 	}
 	
 	public String translateEnglishToChinese (String translationText) throws Exception {
+		return translate(translationText, "en", "zh");
+	}
+	
+	/**
+	 * Translate between any of the configured language pairs.
+	 * Safe to call from several threads at once: a new SDK request object is made for each call.
+	 */
+	public String translate (String translationText, String sourceLanguage, String targetLanguage) throws Exception {
+		
+		if (!supports(sourceLanguage, targetLanguage)) {
+			throw new Exception("Language pair " + sourceLanguage + ":" + targetLanguage + " is not configured. Configured pairs: " + languagePairs);
+		}
 		
 		if (this.isSimulation) {
-			return SIMULATED_CHINESE;
+			if (targetLanguage.equals("en")) {
+				return SIMULATED_ENGLISH;
+			}
+			if (targetLanguage.equals("zh")) {
+				return SIMULATED_CHINESE;
+			}
+			return SIMULATED_ENGLISH + " (" + targetLanguage + ")";
 		}
+		
 		String translationResponse = "";
 		try {
-			generalRequestToChinese.setSourceText(URLEncoder.encode(translationText,"UTF-8"));
-			generalResponse = client.getAcsResponse(generalRequestToChinese);  
+			TranslateGeneralRequest generalRequest = new TranslateGeneralRequest();
+			generalRequest.setSourceLanguage(sourceLanguage);
+			generalRequest.setTargetLanguage(targetLanguage);
+			generalRequest.setMethod(MethodType.POST);
+			generalRequest.setFormatType("text");
+			generalRequest.setSourceText(URLEncoder.encode(translationText,"UTF-8"));
+			
+			TranslateGeneralResponse generalResponse = client.getAcsResponse(generalRequest);
 			JSONObject translationResponseJSON = (JSONObject) JSONObject.toJSON(generalResponse);
 			
 			if (translationResponseJSON.getInteger("code") == REQUEST_OK_CODE) {
@@ -130,7 +224,6 @@ class MachineTranslationService {
 				throw new Exception("Received a non-OK response from SDK: " + translationResponseJSON.toString());
 			}
 			
-			
 		} catch (UnsupportedEncodingException e) {
 			// Do nothing
 		} catch (ServerException se) {
@@ -142,5 +235,5 @@ class MachineTranslationService {
 		
 		return translationResponse;
 	}
-		
+	
 }
@@ -0,0 +1,80 @@
+package com.itsJamilAhmed.samples.alibaba.nlp;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded queue of requests waiting to be processed, with its own fixed number of worker threads, and its own threads for
+ * translating a request into several languages in parallel.
+ */
+
+final class RequestLane {
+
+	final String name;
+	private final ThreadPoolExecutor executor;
+	final ExecutorService fanOutExecutor;
+
+	RequestLane(String name, int threads, int capacity, int fanOutThreads) {
+
+		this.name = name;
+
+		final AtomicInteger threadCount = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(capacity),
+				runnable -> {
+					Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				},
+				(runnable, rejectingExecutor) -> {
+					// Lane is full: hold the caller (the message listener) until there is room. The broker then holds back further messages.
+					try {
+						rejectingExecutor.getQueue().put(runnable);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new RejectedExecutionException("Interrupted while waiting for room in the " + name + " lane");
+					}
+				});
+		// All threads are up front, so trySubmit can go straight to the queue
+		executor.prestartAllCoreThreads();
+
+		final AtomicInteger fanOutThreadCount = new AtomicInteger();
+		fanOutExecutor = Executors.newFixedThreadPool(fanOutThreads, runnable -> {
+			Thread thread = new Thread(runnable, name + "-FanOut-" + fanOutThreadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Queue the request, waiting for room if the lane is full.
+	 */
+	void submit(Runnable request) {
+		executor.execute(request);
+	}
+
+	/**
+	 * Queue the request only if there is room right now. Returns false, without waiting, if the lane is full.
+	 */
+	boolean trySubmit(Runnable request) {
+		return !executor.isShutdown() && executor.getQueue().offer(request);
+	}
+
+	int queued() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Stop taking requests and wait a little while for the queued ones to finish.
+	 */
+	void shutdown(long timeoutMs) throws InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+		fanOutExecutor.shutdown();
+	}
+}
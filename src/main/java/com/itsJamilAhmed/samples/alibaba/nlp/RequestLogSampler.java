@@ -0,0 +1,25 @@
+package com.itsJamilAhmed.samples.alibaba.nlp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which requests get a per-request log line: one in every N, starting with the first.
+ * A rate of 1 logs every request and 0 logs none.
+ */
+
+final class RequestLogSampler {
+
+	private final long sampleRate;
+	private final AtomicLong requestCount = new AtomicLong();
+
+	RequestLogSampler(long sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+
+	boolean shouldLog() {
+		if (sampleRate <= 1) {
+			return sampleRate == 1;
+		}
+		return requestCount.getAndIncrement() % sampleRate == 0;
+	}
+}
@@ -0,0 +1,228 @@
+package com.itsJamilAhmed.samples.alibaba.nlp;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends each received translation request to a compact binary log so real traffic can later be replayed.
+ * The listener thread only queues the request; encoding and buffered file writes happen on a dedicated writer thread.
+ *
+ * File layout (big-endian): a header of magic (int) and version (short), then one record per request of
+ * timestamp in msecs (long), text size in UTF-8 bytes (int), correlation ID length (unsigned short), correlation ID bytes, text bytes.
+ */
+
+class TrafficCaptureLog implements AutoCloseable {
+
+	final static int FILE_MAGIC = 0x4E4C5043;	// "NLPC"
+	final static short FILE_VERSION = 1;
+
+	final static int QUEUE_CAPACITY = 65536;
+	final static int WRITE_BUFFER_BYTES = 256 * 1024;
+
+	final static Logger logger = LoggerFactory.getLogger(TrafficCaptureLog.class);
+
+	private final BlockingQueue<CapturedRequest> pending = new ArrayBlockingQueue<CapturedRequest>(QUEUE_CAPACITY);
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+	private final FileChannel channel;
+	private final Thread writerThread;
+	private final AtomicLong droppedCount = new AtomicLong();
+	private volatile boolean running = true;
+
+	/**
+	 * A single captured request, as recorded on the way in and as read back for replay.
+	 */
+	static class CapturedRequest {
+		final long timestamp;
+		final String correlationId;
+		final String text;
+
+		CapturedRequest(long timestamp, String correlationId, String text) {
+			this.timestamp = timestamp;
+			this.correlationId = correlationId;
+			this.text = text;
+		}
+	}
+
+	public TrafficCaptureLog(String filePath) throws IOException {
+
+		channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+		buffer.putInt(FILE_MAGIC);
+		buffer.putShort(FILE_VERSION);
+
+		writerThread = new Thread(this::writeLoop, "TrafficCapture");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Queue a request for capture. Never blocks the caller: if the writer has fallen too far behind the request is dropped and counted.
+	 * A null correlation ID or text (e.g. a TextMessage with no body) is captured as empty.
+	 */
+	public void record(long timestamp, String correlationId, String text) {
+		if (!pending.offer(new CapturedRequest(timestamp, correlationId == null ? "" : correlationId, text == null ? "" : text))) {
+			droppedCount.incrementAndGet();
+		}
+	}
+
+	private void writeLoop() {
+
+		List<CapturedRequest> batch = new ArrayList<CapturedRequest>();
+
+		try {
+			while (running || !pending.isEmpty()) {
+
+				CapturedRequest first = pending.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				pending.drainTo(batch);
+
+				for (CapturedRequest captured : batch) {
+					try {
+						writeRecord(captured);
+					} catch (RuntimeException e) {
+						// Nothing is put in the buffer until the record is fully encoded, so skipping it leaves the file intact
+						logger.error("Error occurred while capturing a request, skipped it: {}", e.toString());
+					}
+				}
+				batch.clear();
+
+				// Queue has run dry so push out what has been buffered so far
+				flush();
+			}
+		} catch (InterruptedException e) {
+			// Closing down
+		} catch (IOException e) {
+			logger.error("Error occurred while writing the traffic capture file, capture stopped: {}", e.getMessage());
+		}
+	}
+
+	private void writeRecord(CapturedRequest captured) throws IOException {
+
+		byte[] correlationBytes = captured.correlationId.getBytes(StandardCharsets.UTF_8);
+		if (correlationBytes.length > 0xFFFF) {
+			// Cut at a character boundary: step back over any UTF-8 continuation bytes (10xxxxxx)
+			int length = 0xFFFF;
+			while (length > 0 && (correlationBytes[length] & 0xC0) == 0x80) {
+				length--;
+			}
+			correlationBytes = Arrays.copyOf(correlationBytes, length);
+		}
+		byte[] textBytes = captured.text.getBytes(StandardCharsets.UTF_8);
+
+		int headerSize = Long.BYTES + Integer.BYTES + Short.BYTES + correlationBytes.length;
+		if (buffer.remaining() < headerSize) {
+			flush();
+		}
+		buffer.putLong(captured.timestamp);
+		buffer.putInt(textBytes.length);
+		buffer.putShort((short) correlationBytes.length);
+		buffer.put(correlationBytes);
+
+		// Large texts may not fit in the buffer, so copy across in chunks
+		int offset = 0;
+		while (offset < textBytes.length) {
+			if (!buffer.hasRemaining()) {
+				flush();
+			}
+			int chunk = Math.min(buffer.remaining(), textBytes.length - offset);
+			buffer.put(textBytes, offset, chunk);
+			offset += chunk;
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Let the writer finish off any requests still queued, then close the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		running = false;
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		channel.close();
+
+		if (droppedCount.get() > 0) {
+			logger.warn("Traffic capture dropped {} requests as the writer could not keep up.", droppedCount.get());
+		}
+	}
+
+	/**
+	 * Read back every request in a capture file, in recorded order.
+	 * A partly written last record (e.g. the replier was killed or the disk filled up) is left out with a warning.
+	 */
+	public static List<CapturedRequest> readAll(String filePath) throws IOException {
+
+		List<CapturedRequest> requests = new ArrayList<CapturedRequest>();
+
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+
+			if (input.readInt() != FILE_MAGIC) {
+				throw new IOException("Not a traffic capture file: " + filePath);
+			}
+			short version = input.readShort();
+			if (version != FILE_VERSION) {
+				throw new IOException("Unsupported traffic capture file version: " + version);
+			}
+
+			while (true) {
+				long timestamp;
+				try {
+					timestamp = input.readLong();
+				} catch (EOFException e) {
+					// Clean end of file, on a record boundary
+					break;
+				}
+				try {
+					int textSize = input.readInt();
+					if (textSize < 0) {
+						throw new IOException("Corrupt traffic capture file, negative text size after " + requests.size() + " requests: " + filePath);
+					}
+					byte[] correlationBytes = new byte[input.readUnsignedShort()];
+					input.readFully(correlationBytes);
+					byte[] textBytes = new byte[textSize];
+					input.readFully(textBytes);
+
+					requests.add(new CapturedRequest(timestamp,
+							new String(correlationBytes, StandardCharsets.UTF_8),
+							new String(textBytes, StandardCharsets.UTF_8)));
+				} catch (EOFException e) {
+					logger.warn("Traffic capture file ends part way through a record, ignoring it. Read {} complete requests from {}", requests.size(), filePath);
+					break;
+				}
+			}
+		}
+		return requests;
+	}
+}
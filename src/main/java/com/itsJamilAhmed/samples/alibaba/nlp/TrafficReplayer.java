@@ -0,0 +1,288 @@
+package com.itsJamilAhmed.samples.alibaba.nlp;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import javax.naming.NameNotFoundException;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentGroup;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.itsJamilAhmed.samples.alibaba.nlp.TrafficCaptureLog.CapturedRequest;
+
+/**
+ * Sends the requests from a TranslationReplier capture file back through the JMS destination and reports the reply latency percentiles.
+ * Requests can be paced as originally recorded, sped up by a factor, or sent as fast as possible.
+ */
+
+public class TrafficReplayer {
+
+	final static String DEFAULT_JNDI_FILENAME = "./jndi.properties";
+	final static String DEFAULT_SPEED = "1";
+
+	// Same label as the TranslationRequestor so the replayed requests arrive just as the originals did
+	final static String JNDI_DESTINATION_NAME = "nlp-translation-requests-send";
+	final static String JNDI_CF_NAME = "ConnectionFactory";
+
+    final static String PROGRAM_NAME = "TrafficReplayer.jar";
+
+    final static Logger logger = LoggerFactory.getLogger(TrafficReplayer.class);
+
+    final long REPLY_TIMEOUT_MS = 10000; // 10 seconds
+
+	/**
+	 * Use argparse4j to parse the program arguments and return a map.
+	 * Handle arguments validation, set default values, show usage output, etc.
+	 */
+	private static Map<String,Object> parseArgs(String[] args) {
+
+		// Where to save the parsed arguments as they go through the parsers?
+		Map<String,Object> parsedArgs = new HashMap<String,Object>();
+
+		// Build the Argument Parser and Argument Groups before using it
+		ArgumentParser myArgParser = ArgumentParsers.newFor(PROGRAM_NAME).defaultFormatWidth(200).addHelp(true).build().defaultHelp(false);
+
+		ArgumentGroup jndiArgGroup = myArgParser.addArgumentGroup("File-based JNDI Access");
+
+		// Note: Cannot look for the jndi.properties file in the classpath as the program will be a runnable jar.
+		jndiArgGroup.addArgument("-j", "--jndi-properties")
+				.type(Arguments.fileType().verifyIsFile().verifyCanRead())
+				.required(true)
+				.setDefault(DEFAULT_JNDI_FILENAME)
+				.help("JNDI Properties file to lookup Connection Factory and Topic Destination. (Was not found at default path: " + DEFAULT_JNDI_FILENAME + ")");
+
+		ArgumentGroup replayArgGroup = myArgParser.addArgumentGroup("Traffic Replay");
+
+		replayArgGroup.addArgument("-c", "--capture-file")
+				.type(Arguments.fileType().verifyIsFile().verifyCanRead())
+				.required(true)
+				.help("Capture file written by the TranslationReplier program with its --capture-file option.");
+
+		replayArgGroup.addArgument("-s", "--speed")
+				.required(false)
+				.setDefault(DEFAULT_SPEED)
+				.help("Replay speed as a multiple of the recorded pacing (e.g. 1, 2.5, 10x) or 'max' to send without any pacing. (Default: " + DEFAULT_SPEED + ")");
+
+		// Now ready to try and parse the arguments...
+		try{
+			myArgParser.parseArgs(args, parsedArgs);
+		}
+		catch (ArgumentParserException e) {
+
+			// Leaving this one as System.err and not via logger, in case that could not get setup properly and switched to no-op.
+			System.err.println("ERROR: Arguments Processing Exception. -> " + e.getMessage() + ".\n");
+			myArgParser.printHelp();
+			System.exit(0);
+		}
+		return parsedArgs;
+	}
+
+	/**
+	 * Turn the speed argument into a multiplier. Zero is returned for 'max', meaning no pacing at all.
+	 */
+	private static double parseSpeed(String speed) {
+
+		if (speed.equalsIgnoreCase("max")) {
+			return 0;
+		}
+
+		String multiplier = speed.toLowerCase().endsWith("x") ? speed.substring(0, speed.length() - 1) : speed;
+		try {
+			double value = Double.parseDouble(multiplier);
+			if (value > 0) {
+				return value;
+			}
+		} catch (NumberFormatException e) {
+			// Fall through to the error below
+		}
+
+		logger.error("Invalid replay speed '{}'. Expecting a positive number or 'max'.", speed);
+		logger.error("Exiting program.");
+		System.exit(1);
+		return 0;
+	}
+
+    private void run(String fileJNDIpath, List<CapturedRequest> requests, double speed) {
+
+    	Context jndiContext;
+        ConnectionFactory connectionFactory = null;
+        Destination destination = null;
+        TranslationClient client = null;
+
+        final AtomicLongArray latencies = new AtomicLongArray(requests.size());
+        final AtomicInteger replyCount = new AtomicInteger();
+        final List<CompletableFuture<String>> replies = new ArrayList<CompletableFuture<String>>(requests.size());
+
+        logger.info("Using file-based JNDI at: {}", fileJNDIpath);
+
+        // Do the JNDI lookups
+		try {
+
+	        InputStream input = new FileInputStream(fileJNDIpath);
+
+	        Properties properties = new Properties();
+	        properties.load(input);
+
+			jndiContext = new InitialContext(properties);
+			logger.info("Looked up initial context: {}", jndiContext);
+
+			connectionFactory = (ConnectionFactory) jndiContext.lookup(JNDI_CF_NAME);
+			logger.info("Looked up connection factory label: {} to: {}", JNDI_CF_NAME, connectionFactory);
+
+			destination = (Destination) jndiContext.lookup(JNDI_DESTINATION_NAME);
+			logger.info("Looked up destination label: {} to: {}", JNDI_DESTINATION_NAME, destination);
+
+		}
+		catch (NameNotFoundException ne) {
+			logger.error("Could not find the label '{}' in the JNDI for lookup." , ne.getExplanation());
+			logger.error("Exiting program.");
+			System.exit(1);
+		}
+		catch (Exception e) {
+			logger.error("Error occurred during JNDI lookups: {}", e.toString());
+			logger.error("Exiting program.");
+			System.exit(1);
+		}
+
+		// Try connecting. Replies are matched up and timed out by the client.
+		try {
+			client = new TranslationClient(connectionFactory, destination, REPLY_TIMEOUT_MS);
+
+	        logger.info("### Successfully connected session to the JMS Broker. ###");
+
+		} catch (Exception e) {
+			logger.error("Could not connect to the JMS Broker: {}", e.toString());
+			logger.error("Exiting program.");
+			System.exit(1);
+		}
+
+
+        ////////////////////////
+        // Send each captured request, paced against the recorded timestamps
+        ////////////////////////
+
+        logger.info("### Replaying {} requests at speed: {} ###", requests.size(), speed == 0 ? "max" : speed + "x");
+
+        long firstTimestamp = requests.get(0).timestamp;
+        long startNanos = System.nanoTime();
+
+        try {
+        	for (CapturedRequest captured : requests) {
+
+        		if (speed > 0) {
+        			long dueNanos = startNanos + (long) (TimeUnit.MILLISECONDS.toNanos(captured.timestamp - firstTimestamp) / speed);
+        			long waitNanos = dueNanos - System.nanoTime();
+        			if (waitNanos > 0) {
+        				TimeUnit.NANOSECONDS.sleep(waitNanos);
+        			}
+        		}
+
+        		final long sentNanos = System.nanoTime();
+        		replies.add(client.translate(captured.text).whenComplete((translation, error) -> {
+        			if (error == null) {
+        				latencies.set(replyCount.getAndIncrement(), System.nanoTime() - sentNanos);
+        			}
+        			else {
+        				logger.debug("Replayed request failed: {}", error.toString());
+        			}
+        		}));
+        	}
+        } catch (InterruptedException e) {
+        	logger.info("Replay interrupted after {} requests.", replies.size());
+        }
+
+        long sendElapsedNanos = System.nanoTime() - startNanos;
+
+        // Wait for the outstanding replies. The client fails any that do not arrive within the reply timeout.
+        CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[0]))
+        		.handle((result, error) -> null)
+        		.join();
+
+        report(latencies, replyCount.get(), replies.size(), sendElapsedNanos);
+
+   		// All done, close the client and shutdown
+		try {
+			client.close();
+		} catch (JMSException e) {
+			logger.error("Error occurred during the shutdown process: {}", e.toString());
+			logger.error("Exiting program.");
+			System.exit(1);
+		}
+    }
+
+    private void report(AtomicLongArray latencies, int replies, int sent, long sendElapsedNanos) {
+
+    	long[] sorted = new long[replies];
+    	for (int i = 0; i < replies; i++) {
+    		sorted[i] = latencies.get(i);
+    	}
+    	Arrays.sort(sorted);
+
+    	System.out.printf("Requests sent: %d in %.3f secs (%.1f/sec)\n", sent, sendElapsedNanos / 1e9, sent / (sendElapsedNanos / 1e9));
+    	System.out.printf("Replies received: %d, failed or timed out: %d\n", replies, sent - replies);
+
+    	if (replies == 0) {
+    		return;
+    	}
+
+    	System.out.printf("Latency msecs\tp50: %.3f\tp90: %.3f\tp99: %.3f\tp99.9: %.3f\tmax: %.3f\n",
+    			percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), percentile(sorted, 99.9),
+    			sorted[sorted.length - 1] / 1e6);
+    }
+
+    /**
+     * Nearest-rank percentile of the sorted latencies, in msecs.
+     */
+    private static double percentile(long[] sorted, double percentile) {
+    	int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+    	return sorted[Math.max(rank - 1, 0)] / 1e6;
+    }
+
+    public static void main(String... args) throws Exception {
+
+    	Map<String,Object> parameters = parseArgs(args);
+
+        logger.info("###### Traffic Replayer Program Started ######");
+
+        double speed = parseSpeed(parameters.get("speed").toString());
+
+        List<CapturedRequest> requests = null;
+        try {
+        	requests = TrafficCaptureLog.readAll(parameters.get("capture_file").toString());
+        } catch (Exception e) {
+        	logger.error("Error occurred while reading the capture file: {}", e.toString());
+        	System.exit(1);
+        }
+
+        if (requests.isEmpty()) {
+        	logger.info("No requests found in the capture file. Nothing to replay.");
+        	return;
+        }
+
+        new TrafficReplayer().run(
+        		parameters.get("jndi_properties").toString(),
+        		requests,
+        		speed);
+    }
+}
@@ -0,0 +1,268 @@
+package com.itsJamilAhmed.samples.alibaba.nlp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TemporaryTopic;
+import javax.jms.TextMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread-safe client for the translation service, for use by any number of concurrent callers.
+ * All requests share one connection and one temporary reply topic. A single reply listener matches each reply
+ * to its waiting caller by correlation ID and completes that caller's future.
+ * Futures are completed on the completion executor (by default the common fork-join pool), never on the JMS
+ * delivery thread, so a slow caller callback cannot hold up the replies of other callers.
+ */
+
+public class TranslationClient implements AutoCloseable {
+
+	// Replies only ever come back on this client's own temporary topic, so a counter is unique enough for correlation
+	final static String CORRELATION_ID_PREFIX = "TC-";
+
+	// Request and reply message properties for translating into particular target languages
+	public final static String TARGET_LANGUAGES_PROPERTY = "TargetLanguages";
+	public final static String SOURCE_LANGUAGE_PROPERTY = "SourceLanguage";
+	public final static String FAILED_TARGET_LANGUAGES_PROPERTY = "FailedTargetLanguages";
+
+	// Texts longer than this are sent at a low priority, so the replier can keep them from holding up short ones.
+	// An explicit priority decides the replier's lane, so its --bulk-threshold only applies to senders left at the default priority.
+	public final static int BULK_TEXT_LENGTH = 1024;
+	public final static int INTERACTIVE_PRIORITY = 7;
+	public final static int BULK_PRIORITY = 2;
+
+	final static Logger logger = LoggerFactory.getLogger(TranslationClient.class);
+
+	private final Destination destination;
+	private final long replyTimeoutMs;
+
+	private final Connection connection;
+	private final Session producerSession;
+	private final Session consumerSession;
+	private final MessageProducer producer;
+	private final MessageConsumer consumer;
+	private final TemporaryTopic replyToTopic;
+
+	private final Map<String,CompletableFuture<Message>> pendingReplies = new ConcurrentHashMap<String,CompletableFuture<Message>>();
+	private final AtomicLong nextCorrelationId = new AtomicLong();
+	private final ScheduledThreadPoolExecutor timeoutScheduler;
+	private final Executor completionExecutor;
+
+	/**
+	 * Connect to the broker and start listening for replies.
+	 * Requests are sent to the given destination and fail with a TimeoutException if no reply arrives within replyTimeoutMs.
+	 */
+	public TranslationClient(ConnectionFactory connectionFactory, Destination destination, long replyTimeoutMs) throws JMSException {
+		this(connectionFactory, destination, replyTimeoutMs, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * As above, but the futures returned to callers, and any stages chained on them without an executor of their own,
+	 * complete on the given executor.
+	 */
+	public TranslationClient(ConnectionFactory connectionFactory, Destination destination, long replyTimeoutMs, Executor completionExecutor) throws JMSException {
+
+		this.destination = destination;
+		this.replyTimeoutMs = replyTimeoutMs;
+		this.completionExecutor = completionExecutor;
+
+		timeoutScheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "TranslationClientTimeout");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// Most requests get their reply in time, so don't leave their cancelled timeouts sitting in the queue
+		timeoutScheduler.setRemoveOnCancelPolicy(true);
+
+		connection = connectionFactory.createConnection();
+
+		// Sessions are single-threaded: sending is serialised on one, while replies are delivered on the other
+		producerSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		consumerSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+		producer = producerSession.createProducer(null);
+
+		replyToTopic = consumerSession.createTemporaryTopic();
+		consumer = consumerSession.createConsumer(replyToTopic);
+		consumer.setMessageListener(this::onReply);
+
+		connection.start();
+	}
+
+	/**
+	 * Send the text for translation. The returned future completes with the translated text when the reply arrives.
+	 * The replier works out the translation direction from the text.
+	 */
+	public CompletableFuture<String> translate(String text) {
+		return sendRequest(text, null, null).thenApply(reply -> {
+			try {
+				// Check if the expected type of message was received
+				if (reply instanceof TextMessage) {
+					return ((TextMessage) reply).getText();
+				}
+				// Replier not coordinated as expected on message type
+				throw new JMSException("Message response received but not expected TextMessage type.");
+			} catch (JMSException e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+	/**
+	 * Send the text for translation into each of the target languages (e.g. "zh", "ja", "fr") in one request.
+	 * The returned future completes with the translations keyed on language code. Any target language the replier
+	 * could not translate into is left out of the map.
+	 */
+	public CompletableFuture<Map<String,String>> translateTo(String text, String... targetLanguages) {
+		return translateFrom(text, null, targetLanguages);
+	}
+
+	/**
+	 * As translateTo, but with the source language given rather than detected by the replier. Needed for any source language
+	 * other than English or Chinese, e.g. translateFrom(text, "ja", "en").
+	 */
+	public CompletableFuture<Map<String,String>> translateFrom(String text, String sourceLanguage, String... targetLanguages) {
+		return sendRequest(text, sourceLanguage, String.join(",", targetLanguages)).thenApply(reply -> {
+			try {
+				if (!(reply instanceof MapMessage)) {
+					throw new JMSException("Message response received but not expected MapMessage type.");
+				}
+				MapMessage mapReply = (MapMessage) reply;
+
+				Map<String,String> translations = new LinkedHashMap<String,String>();
+				for (String targetLanguage : targetLanguages) {
+					if (mapReply.itemExists(targetLanguage)) {
+						translations.put(targetLanguage, mapReply.getString(targetLanguage));
+					}
+				}
+				if (mapReply.getStringProperty(FAILED_TARGET_LANGUAGES_PROPERTY) != null) {
+					logger.debug("Replier could not translate into: {}", mapReply.getStringProperty(FAILED_TARGET_LANGUAGES_PROPERTY));
+				}
+				return translations;
+			} catch (JMSException e) {
+				throw new CompletionException(e);
+			}
+		});
+	}
+
+	private CompletableFuture<Message> sendRequest(String text, String sourceLanguage, String targetLanguages) {
+
+		CompletableFuture<Message> reply = new CompletableFuture<Message>();
+		if (text == null) {
+			reply.completeExceptionally(new IllegalArgumentException("Translation text must not be null."));
+			return reply;
+		}
+
+		String correlationId = CORRELATION_ID_PREFIX + nextCorrelationId.incrementAndGet();
+		pendingReplies.put(correlationId, reply);
+
+		try {
+			synchronized (producerSession) {
+				TextMessage request = producerSession.createTextMessage(text);
+
+				// The application must put the destination of the reply and a correlation ID in the request
+				request.setJMSReplyTo(replyToTopic);
+				request.setJMSCorrelationID(correlationId);
+
+				if (targetLanguages != null) {
+					request.setStringProperty(TARGET_LANGUAGES_PROPERTY, targetLanguages);
+				}
+				if (sourceLanguage != null) {
+					request.setStringProperty(SOURCE_LANGUAGE_PROPERTY, sourceLanguage);
+				}
+
+				producer.send(destination, request,
+						DeliveryMode.NON_PERSISTENT,
+						text.length() > BULK_TEXT_LENGTH ? BULK_PRIORITY : INTERACTIVE_PRIORITY,
+						Message.DEFAULT_TIME_TO_LIVE);
+			}
+		} catch (JMSException e) {
+			pendingReplies.remove(correlationId);
+			reply.completeExceptionally(e);
+			return reply;
+		}
+
+		ScheduledFuture<?> timeout = timeoutScheduler.schedule(() -> {
+			if (pendingReplies.remove(correlationId) != null) {
+				completionExecutor.execute(() -> reply.completeExceptionally(new TimeoutException("No reply received in " + replyTimeoutMs + " msecs")));
+			}
+		}, replyTimeoutMs, TimeUnit.MILLISECONDS);
+		reply.whenComplete((result, error) -> timeout.cancel(false));
+
+		return reply;
+	}
+
+	private void onReply(Message reply) {
+		try {
+			if (reply.getJMSCorrelationID() == null) {
+				// May be a malformed response from the replier
+				logger.debug("Received a reply message with no correlationID. This field is needed for a direct request.");
+				return;
+			}
+
+			// Apache Qpid JMS prefixes correlation ID with string "ID:" so remove such prefix for interoperability across JMS providers
+			String correlationId = reply.getJMSCorrelationID();
+			if (correlationId.startsWith("ID:")) {
+				correlationId = correlationId.substring(3);
+			}
+
+			CompletableFuture<Message> pendingReply = pendingReplies.remove(correlationId);
+			if (pendingReply == null) {
+				// May be a stray or delayed response that is no longer useful
+				logger.debug("Received unknown or timed out correlationID {} in reply message.", reply.getJMSCorrelationID());
+				return;
+			}
+
+			// Hand off, so the caller's dependent stages do not run on the JMS delivery thread
+			completionExecutor.execute(() -> pendingReply.complete(reply));
+
+		} catch (JMSException e) {
+			logger.error("Error occurred during reply message receive: {}", e.toString());
+		}
+	}
+
+	/**
+	 * Fail any requests still waiting for a reply, then close the JMS objects.
+	 */
+	@Override
+	public void close() throws JMSException {
+
+		timeoutScheduler.shutdownNow();
+
+		connection.stop();
+		consumer.close();
+		producer.close();
+		consumerSession.close();
+		producerSession.close();
+		connection.close();
+
+		for (String correlationId : pendingReplies.keySet()) {
+			CompletableFuture<Message> pendingReply = pendingReplies.remove(correlationId);
+			if (pendingReply != null) {
+				pendingReply.completeExceptionally(new JMSException("Translation client closed before reply received."));
+			}
+		}
+	}
+}
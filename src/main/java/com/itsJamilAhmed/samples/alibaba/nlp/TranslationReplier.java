@@ -2,9 +2,18 @@ package com.itsJamilAhmed.samples.alibaba.nlp;
 
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.Properties;
 
 import javax.jms.BytesMessage;
@@ -13,6 +22,7 @@ import javax.jms.ConnectionFactory;
 import javax.jms.DeliveryMode;
 import javax.jms.Destination;
 import javax.jms.JMSException;
+import javax.jms.MapMessage;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
 import javax.jms.MessageListener;
@@ -44,6 +54,19 @@ public class TranslationReplier {
 
 	final static String DEFAULT_JNDI_FILENAME = "./jndi.properties";
 	final static String DEFAULT_ALIBABASERVICE_FILENAME = "./alibaba-mt.properties";
+	final static int DEFAULT_LOG_SAMPLE_RATE = 1;
+	final static int DEFAULT_TRANSLATION_THREADS = 8;
+	final static int DEFAULT_BULK_THRESHOLD_CHARS = TranslationClient.BULK_TEXT_LENGTH;
+	final static int DEFAULT_INTERACTIVE_THREADS = 4;
+	final static int DEFAULT_BULK_THREADS = 2;
+	final static int DEFAULT_LANE_CAPACITY = 1000;
+	final static long LANE_SHUTDOWN_TIMEOUT_MS = 10000;
+	final static long TRAINING_REPLY_TIMEOUT_MS = 10000;
+	final static int MAX_SPILLED_REQUESTS = 1;
+	
+	// Requests sent at a priority below the default go straight to the bulk lane's consumer
+	final static String INTERACTIVE_SELECTOR = "JMSPriority >= " + Message.DEFAULT_PRIORITY;
+	final static String BULK_SELECTOR = "JMSPriority < " + Message.DEFAULT_PRIORITY;
 	
 	// The sender and receiver completely decoupled in that they may even look up different destinations in JNDI and let the broker take care of the matching up.
 	// e.g. Publish to topic, subscribe from a queue or wildcard pattern.
@@ -57,6 +80,56 @@ public class TranslationReplier {
     // Latch used for synchronizing between threads
     final CountDownLatch latch = new CountDownLatch(1);
     
+    // Runs the startup steps in parallel. Daemon threads so they never hold the program open.
+    final ExecutorService startupExecutor = Executors.newCachedThreadPool(runnable -> {
+    	Thread thread = new Thread(runnable, "Startup");
+    	thread.setDaemon(true);
+    	return thread;
+    });
+    
+    // Which requests get an info level log line once processed
+    final RequestLogSampler requestLogSampler;
+    
+    // Requests are processed in one of two lanes: short ones in the interactive lane and long ones in the bulk lane.
+    // Each lane is fed by a consumer of its own, picked out by JMS priority.
+    final RequestLane interactiveLane;
+    final RequestLane bulkLane;
+    final int bulkThresholdChars;
+    
+    // Limits how many interactive workers can be taken by long default-priority requests that found the bulk lane full
+    private final Semaphore spillPermits = new Semaphore(MAX_SPILLED_REQUESTS);
+    
+    // Set up by connect()
+    private ConnectionFactory connectionFactory = null;
+    private Destination destination = null;
+    private Connection connection = null;
+    private Session interactiveSession = null;
+    private Session bulkSession = null;
+    private MessageConsumer interactiveConsumer = null;
+    private MessageConsumer bulkConsumer = null;
+    
+    // Sessions are single-threaded, so each lane thread sends its replies through a session of its own
+    private final List<ReplySender> allReplySenders = new CopyOnWriteArrayList<ReplySender>();
+    private final ThreadLocal<ReplySender> replySenders = ThreadLocal.withInitial(() -> {
+    	try {
+    		ReplySender sender = new ReplySender(connection.createSession(false, Session.AUTO_ACKNOWLEDGE));
+    		allReplySenders.add(sender);
+    		return sender;
+    	} catch (JMSException e) {
+    		throw new IllegalStateException("Could not create a session for sending replies: " + e.getMessage(), e);
+    	}
+    });
+    
+    static class ReplySender {
+    	final Session session;
+    	final MessageProducer producer;
+    	
+    	ReplySender(Session session) throws JMSException {
+    		this.session = session;
+    		this.producer = session.createProducer(null);
+    	}
+    }
+    
 	/**
 	 * Use argparse4j to parse the program arguments and return a map.
 	 * Handle arguments validation, set default values, show usage output, etc. 
@@ -90,6 +163,62 @@ public class TranslationReplier {
 				.setDefault(DEFAULT_ALIBABASERVICE_FILENAME)
 				.help("A properties file to lookup service-region, access-key-ID and access-key-secret (Was not found at default path: " + DEFAULT_ALIBABASERVICE_FILENAME + ")");		
 		
+		// Requests asking for several target languages have their translations made in parallel, with up to this many service calls at once in each lane.
+		serviceArgGroup.addArgument("-t", "--translation-threads")
+				.type(Integer.class)
+				.required(false)
+				.setDefault(DEFAULT_TRANSLATION_THREADS)
+				.help("Maximum number of translation service calls made in parallel for multi-language requests, in each of the request lanes. (Default: " + DEFAULT_TRANSLATION_THREADS + ")");
+		
+		ArgumentGroup laneArgGroup = myArgParser.addArgumentGroup("Request Lanes");
+		
+		// The lanes are sized separately, and a long request at the default priority is told apart by its length.
+		laneArgGroup.addArgument("--bulk-threshold")
+				.type(Integer.class)
+				.required(false)
+				.setDefault(DEFAULT_BULK_THRESHOLD_CHARS)
+				.help("Requests at the default JMS priority with text longer than this many characters go to the bulk lane. Requests sent at any other priority, such as those from the requestor, go by their priority. (Default: " + DEFAULT_BULK_THRESHOLD_CHARS + ")");
+		
+		laneArgGroup.addArgument("--interactive-threads")
+				.type(Integer.class)
+				.required(false)
+				.setDefault(DEFAULT_INTERACTIVE_THREADS)
+				.help("Number of requests processed at once in the interactive lane. (Default: " + DEFAULT_INTERACTIVE_THREADS + ")");
+		
+		laneArgGroup.addArgument("--bulk-threads")
+				.type(Integer.class)
+				.required(false)
+				.setDefault(DEFAULT_BULK_THREADS)
+				.help("Number of requests processed at once in the bulk lane. (Default: " + DEFAULT_BULK_THREADS + ")");
+		
+		laneArgGroup.addArgument("--lane-capacity")
+				.type(Integer.class)
+				.required(false)
+				.setDefault(DEFAULT_LANE_CAPACITY)
+				.help("Number of requests each lane can hold waiting. When a lane is full, its consumer stops receiving until there is room. (Default: " + DEFAULT_LANE_CAPACITY + ")");
+		
+		ArgumentGroup captureArgGroup = myArgParser.addArgumentGroup("Traffic Capture");
+		
+		// Optional: record every request received to a binary file that the TrafficReplayer program can later send again.
+		captureArgGroup.addArgument("-c", "--capture-file")
+				.type(Arguments.fileType().verifyCanCreate())
+				.required(false)
+				.help("Capture each request received (timestamp, text, correlation ID, size) to this file for later replay. Existing file is overwritten.");
+	
+		ArgumentGroup loggingArgGroup = myArgParser.addArgumentGroup("Logging");
+		
+		// At high request rates a log line for every request is a cost of its own, so allow only a sample of them to be logged.
+		loggingArgGroup.addArgument("-l", "--log-sample-rate")
+				.type(Integer.class)
+				.required(false)
+				.setDefault(DEFAULT_LOG_SAMPLE_RATE)
+				.help("Log one in every N processed requests at info level. 1 logs every request, 0 logs none. (Default: " + DEFAULT_LOG_SAMPLE_RATE + ")");
+		
+		ArgumentGroup startupArgGroup = myArgParser.addArgumentGroup("Startup");
+		
+		startupArgGroup.addArgument("--exit-when-ready")
+				.action(Arguments.storeTrue())
+				.help("Send a couple of requests to itself once ready to process requests, then exit. Used for the AppCDS archive training run.");
 	
 		// Now ready to try and parse the arguments...
 		try{				
@@ -106,16 +235,125 @@ public class TranslationReplier {
 	}
 	
 
-    public void run(String fileJNDIpath, MachineTranslationService mtService) throws JMSException {
-    	
-    	
+	public TranslationReplier(int logSampleRate, RequestLane interactiveLane, RequestLane bulkLane, int bulkThresholdChars) {
+		this.requestLogSampler = new RequestLogSampler(logSampleRate);
+		this.interactiveLane = interactiveLane;
+		this.bulkLane = bulkLane;
+		this.bulkThresholdChars = bulkThresholdChars;
+	}
+	
+	/**
+	 * Pick the translation direction from the text itself. Text with nothing to translate is passed back as is, saving a service call.
+	 * Text in neither English nor Chinese is sent with an "auto" source language, leaving the service to work it out.
+	 */
+	private static String translate(MachineTranslationService mtService, String translationRequest) throws Exception {
+		
+		LanguageDetector.Language language = LanguageDetector.detect(translationRequest);
+		if (language == LanguageDetector.Language.NONE) {
+			logger.debug("Nothing to translate in request, passing through. Content: '{}'", translationRequest);
+			return translationRequest;
+		}
+		
+		String targetLanguage = mtService.defaultTargetLanguage(language.code);
+		if (targetLanguage == null) {
+			throw new Exception("No language pair configured to translate from '" + language.code + "'. Configured pairs: " + mtService.getLanguagePairs());
+		}
+		return mtService.translate(translationRequest, language.code, targetLanguage);
+	}
+	
+	/**
+	 * Translate into each of the comma separated target languages in parallel, putting each translation into the reply keyed on its language code.
+	 * The source language is detected from the text unless given. Any target that could not be translated is listed in the reply's 
+	 * failed targets property instead. Returns the translations for logging. The translations are made on the given lane's own fan-out threads.
+	 */
+	private Map<String,String> translateToAll(MachineTranslationService mtService, String translationRequest, String sourceLanguage, 
+			String targetLanguages, MapMessage reply, RequestLane lane) throws JMSException {
+		
+		final String source = sourceLanguage != null ? sourceLanguage : LanguageDetector.detect(translationRequest).code;
+		
+		Map<String,CompletableFuture<String>> pendingTranslations = new LinkedHashMap<String,CompletableFuture<String>>();
+		for (String target : targetLanguages.split(",")) {
+			
+			final String targetLanguage = target.trim();
+			if (targetLanguage.isEmpty() || pendingTranslations.containsKey(targetLanguage)) {
+				continue;
+			}
+			
+			if (source == null || source.equals(targetLanguage)) {
+				// Nothing to translate, or already in the target language
+				pendingTranslations.put(targetLanguage, CompletableFuture.completedFuture(translationRequest));
+			}
+			else {
+				pendingTranslations.put(targetLanguage, CompletableFuture.supplyAsync(() -> {
+					try {
+						return mtService.translate(translationRequest, source, targetLanguage);
+					} catch (Exception e) {
+						throw new CompletionException(e);
+					}
+				}, lane.fanOutExecutor));
+			}
+		}
+		
+		Map<String,String> translations = new LinkedHashMap<String,String>();
+		StringBuilder failedTargets = new StringBuilder();
+		
+		for (Map.Entry<String,CompletableFuture<String>> pendingTranslation : pendingTranslations.entrySet()) {
+			try {
+				String translation = pendingTranslation.getValue().join();
+				translations.put(pendingTranslation.getKey(), translation);
+				reply.setString(pendingTranslation.getKey(), translation);
+			} catch (CompletionException e) {
+				logger.error("Error occurred translating request to '{}': {}", pendingTranslation.getKey(), e.getCause().getMessage());
+				failedTargets.append(failedTargets.length() == 0 ? "" : ",").append(pendingTranslation.getKey());
+			}
+		}
+		
+		if (failedTargets.length() > 0) {
+			reply.setStringProperty(TranslationClient.FAILED_TARGET_LANGUAGES_PROPERTY, failedTargets.toString());
+		}
+		return translations;
+	}
+	
+	/**
+	 * Run the request path once so its classes are loaded and initialised before the first real request arrives.
+	 */
+	private static void warmUp(MachineTranslationService mtService) {
+		
+		LanguageDetector.detect("Warm up 预热");
+		mtService.warmUp();
+		logger.debug("Request path warmed up.");
+	}
+	
+	/**
+	 * Send a short and a long request to this replier and wait for the replies, so the listener, both lanes and the
+	 * reply sending code have their classes loaded for the AppCDS training run. A failure here only means fewer classes archived.
+	 * If other repliers share the request destination they may take these requests instead.
+	 */
+	private void sendTrainingRequests() {
+		
+		StringBuilder longText = new StringBuilder();
+		while (longText.length() <= bulkThresholdChars) {
+			longText.append("This training request is long enough for the bulk lane. ");
+		}
+		
+		try (TranslationClient client = new TranslationClient(connectionFactory, destination, TRAINING_REPLY_TIMEOUT_MS)) {
+			client.translate("Training request").get();
+			client.translateTo(longText.toString(), "zh").get();
+			logger.info("Training requests replied to.");
+		} catch (Exception e) {
+			logger.warn("Training requests failed, fewer classes will be archived: {}", e.toString());
+		}
+	}
+	
+	/**
+	 * Look up the JNDI objects and connect to the broker, creating a consumer for each lane. Consumption is not started here.
+	 * Producers for the replies are created by each lane thread as it needs one.
+	 */
+	private void connect(String fileJNDIpath) {
+		
     	Context jndiContext; 
-        ConnectionFactory connectionFactory = null; 
-        Connection connection = null; 
-        Destination destination = null;
-        MessageConsumer consumer = null;
         
-        logger.info("Using file-based JNDI at: " + fileJNDIpath);
+        logger.info("Using file-based JNDI at: {}", fileJNDIpath);
         
         // Do the JNDI lookups
 		try {
@@ -140,32 +378,202 @@ public class TranslationReplier {
 	        System.exit(1); 
 		}
 		catch (Exception e) {
-			logger.error("Error occurred during JNDI lookups: " + e.toString()); 
+			logger.error("Error occurred during JNDI lookups: {}", e.toString()); 
 	        System.exit(1); 
 		}
 
-		// Create the connection using the factory
-		connection = connectionFactory.createConnection();
-		
-		// Create a non-transacted, auto ACK session from the connection.
-        final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+		try {
+			// Create the connection using the factory
+			connection = connectionFactory.createConnection();
+			
+			// Create a non-transacted, auto ACK session from the connection for each lane, so each consumer gets its own delivery thread.
+	        interactiveSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+	        bulkSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
 
-        logger.info("### Successfully connected session to the JMS Broker. ###");
+	        logger.info("### Successfully connected sessions to the JMS Broker. ###");
+	    	
+	        // Create consumers for receiving the requests on the topic destination, split between them by priority
+	        interactiveConsumer = interactiveSession.createConsumer(destination, INTERACTIVE_SELECTOR);
+	        bulkConsumer = bulkSession.createConsumer(destination, BULK_SELECTOR);
+	        logger.info("Created the message consumers. Interactive: '{}', Bulk: '{}'", INTERACTIVE_SELECTOR, BULK_SELECTOR);
+			
+		} catch (JMSException e) {
+			logger.error("Could not connect to the JMS Broker: {}", e.toString()); 
+	        System.exit(1); 
+		}
+	}
+	
+	/**
+	 * Translate the request and send the reply. Runs on one of the lane threads, each with its own session for sending.
+	 */
+	private void processRequest(Message request, String translationRequest, MachineTranslationService mtService, RequestLane lane) {
+		
+		try {
+			// Extract the reply-to destination and send a response
+			Destination replyDestination = request.getJMSReplyTo();
+			if (replyDestination != null) {
+				
+				ReplySender sender = replySenders.get();
+				
+				// workaround as the Apache Qpid JMS API always sets JMSReplyTo as non-temporary
+				//String replyDestinationName = ((Destination) replyDestination).toString();
+				//replyDestination = new TemporaryTopic(replyDestinationName);
+				
+				Message reply;
+				Object translationResponse;
+				
+				// A request for particular target languages gets all of its translations back in one MapMessage, keyed on language code
+				String targetLanguages = request.getStringProperty(TranslationClient.TARGET_LANGUAGES_PROPERTY);
+				if (targetLanguages == null) {
+					TextMessage textReply = sender.session.createTextMessage();
+					textReply.setText(translate(mtService, translationRequest));
+					translationResponse = textReply.getText();
+					reply = textReply;
+				}
+				else {
+					MapMessage mapReply = sender.session.createMapMessage();
+					translationResponse = translateToAll(mtService, translationRequest,
+							request.getStringProperty(TranslationClient.SOURCE_LANGUAGE_PROPERTY), targetLanguages, mapReply, lane);
+					reply = mapReply;
+				}
+				
+				// Copy the correlation ID from the request to the reply if one is present, otherwise use the MessageID as an alternative
+				if (request.getJMSCorrelationID() == null) {
+					reply.setJMSCorrelationID(request.getJMSMessageID());
+				}
+				else {
+					reply.setJMSCorrelationID(request.getJMSCorrelationID());
+				}
+				
+				// Send the reply, at the same priority as the request
+				sender.producer.send(replyDestination, reply, DeliveryMode.NON_PERSISTENT,
+						request.getJMSPriority(),
+						Message.DEFAULT_TIME_TO_LIVE);
+				
+				if (requestLogSampler.shouldLog()) {
+					// Kept to two parameters: SLF4J has no garbage-free overload beyond that, more would allocate an array on every logged request
+					logger.info("Processed a request: '{}' -> '{}'", translationRequest, translationResponse);
+				}
+			
+			} else {
+				// Nowhere to send the reply to!
+				if (requestLogSampler.shouldLog()) {
+					logger.info("Ignoring a request on destination '{}' with empty reply-to field. Content: '{}', ReplyTo: '{}', CorrelationID: '{}', MessageID: '{}'",
+							request.getJMSDestination(), translationRequest, request.getJMSReplyTo(), request.getJMSCorrelationID(), request.getJMSMessageID());
+				}
+			}
+			
+		} catch (Exception ex) {
+			logger.error("Error occurred during processing of incoming request message: {}", ex.getMessage());
+		}
+	}
+	
+	/**
+	 * Hand the request to a lane. The bulk consumer only gets requests sent below the default priority, which all go to the bulk lane.
+	 * The interactive consumer gets the rest: those above the default priority stay in the interactive lane, and those at the default
+	 * priority go by the length of their text. If the bulk lane is full, up to MAX_SPILLED_REQUESTS long requests at a time are processed
+	 * in the interactive lane instead. Past that, the interactive consumer waits for room in the bulk lane. Only senders that leave
+	 * the priority at the default can cause that wait: sending long texts at a low priority keeps them off the interactive consumer.
+	 */
+	private void dispatch(Message request, String translationRequest, MachineTranslationService mtService, boolean fromBulkConsumer) throws JMSException {
+		
+		if (fromBulkConsumer) {
+			submit(bulkLane, request, translationRequest, mtService);
+			return;
+		}
+		if (request.getJMSPriority() > Message.DEFAULT_PRIORITY || translationRequest.length() <= bulkThresholdChars) {
+			submit(interactiveLane, request, translationRequest, mtService);
+			return;
+		}
+		if (bulkLane.trySubmit(() -> processRequest(request, translationRequest, mtService, bulkLane))) {
+			return;
+		}
+		if (spillPermits.tryAcquire()) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Bulk lane full, processing a long request of {} chars in the interactive lane instead.", translationRequest.length());
+			}
+			interactiveLane.submit(() -> {
+				try {
+					processRequest(request, translationRequest, mtService, interactiveLane);
+				} finally {
+					spillPermits.release();
+				}
+			});
+			return;
+		}
+		submit(bulkLane, request, translationRequest, mtService);
+	}
+	
+	/**
+	 * Queue the request on the lane. While the lane is full, this holds up the calling consumer.
+	 */
+	private void submit(RequestLane lane, Message request, String translationRequest, MachineTranslationService mtService) {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Request queued on the {} lane. Already waiting: {}", lane.name, lane.queued());
+		}
+		lane.submit(() -> processRequest(request, translationRequest, mtService, lane));
+	}
+	
+    public void run(String fileJNDIpath, MachineTranslationService mtService, CompletableFuture<Void> mtServiceReady, TrafficCaptureLog captureLog, boolean exitWhenReady) throws JMSException {
     	
-        // Create consumer for receiving the requests on the topic destination
-        consumer = session.createConsumer(destination);
-        logger.info("Created the message consumer.");
-
-    	// Create producer for sending the reply
-		final MessageProducer producer = session.createProducer(null);
-		logger.info("Created the message producer.");
-
-        // Start receiving requests
-        connection.start();
+    	// Connect to the broker and warm up the request path while the Machine Translation self-test is still in flight
+    	CompletableFuture<Void> brokerReady = CompletableFuture.runAsync(() -> connect(fileJNDIpath), startupExecutor);
+    	CompletableFuture<Void> warmedUp = CompletableFuture.runAsync(() -> warmUp(mtService), startupExecutor);
+    	
+    	// Consumption only starts once all of them are done. Each one exits the program itself if it fails.
+    	CompletableFuture.allOf(mtServiceReady, brokerReady, warmedUp).join();
+    	startupExecutor.shutdown();
 		
+        // Each consumer is delivered to on its own session's thread
+        interactiveConsumer.setMessageListener(createRequestListener(mtService, captureLog, false));
+        bulkConsumer.setMessageListener(createRequestListener(mtService, captureLog, true));
+        
+		////////////////////////
+		// Ready to start receiving requests and process them
+		////////////////////////
+        connection.start();
+		logger.info("### Ready to process requests. Waiting for messages. ({} msecs since JVM start) ###", 
+				System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime());
+        
+        // Used by the AppCDS training run, which also needs the request path exercised before exiting
+        if (exitWhenReady) {
+        	sendTrainingRequests();
+        	latch.countDown();
+        }
+        
+        // the main thread blocks at the next statement the latch is changed elsewhere
+        try {
+			latch.await();
+		} catch (InterruptedException e) {
+			
+		}
+
+        // Stop the connection, let the lanes finish what is queued, then close the JMS with the order reversed from opening order
+        connection.stop();
+        bulkConsumer.close();
+        interactiveConsumer.close();
+        try {
+			interactiveLane.shutdown(LANE_SHUTDOWN_TIMEOUT_MS);
+			bulkLane.shutdown(LANE_SHUTDOWN_TIMEOUT_MS);
+		} catch (InterruptedException e) {
+			logger.warn("Interrupted while waiting for the request lanes to finish.");
+		}
+        for (ReplySender sender : allReplySenders) {
+        	sender.producer.close();
+        	sender.session.close();
+        }
+        bulkSession.close();
+        interactiveSession.close();
+        connection.close();
+    }
+    
+	/**
+	 * The listener for one of the two consumers. Reads the request text, captures it if asked to, then hands it to a lane.
+	 */
+	private MessageListener createRequestListener(MachineTranslationService mtService, TrafficCaptureLog captureLog, boolean fromBulkConsumer) {
 		
         // Use the anonymous inner class for receiving request messages asynchronously
-        consumer.setMessageListener(new MessageListener() {
+        return new MessageListener() {
             @Override
             public void onMessage(Message request) {
             	
@@ -180,8 +588,10 @@ public class TranslationReplier {
 						
 						if (request instanceof TextMessage) {
 							translationRequest = ((TextMessage) request).getText();
-						    logger.debug("TextMessage request received. Content: '{}', Destination: '{}', ReplyTo: '{}', CorrelationID: '{}', MessageID: '{}'", 
-						    		translationRequest, request.getJMSDestination(), request.getJMSReplyTo(), request.getJMSCorrelationID(), request.getJMSMessageID());
+						    if (logger.isDebugEnabled()) {
+						    	logger.debug("TextMessage request received. Content: '{}', Destination: '{}', ReplyTo: '{}', CorrelationID: '{}', MessageID: '{}'", 
+						    			translationRequest, request.getJMSDestination(), request.getJMSReplyTo(), request.getJMSCorrelationID(), request.getJMSMessageID());
+						    }
 						}
 						else {
 							// BytesMessage then... Need to get length and then read bytes appropriately
@@ -190,43 +600,22 @@ public class TranslationReplier {
 						    bytesMessage.readBytes(data);
 						    translationRequest =  new String(data);
 							
-						    logger.debug("BytesMessage request received. Content as String: '{}', Destination: '{}', ReplyTo: '{}', CorrelationID: '{}', MessageID: '{}'", 
-						    		translationRequest, request.getJMSDestination(), request.getJMSReplyTo(), request.getJMSCorrelationID(), request.getJMSMessageID());
+						    if (logger.isDebugEnabled()) {
+						    	logger.debug("BytesMessage request received. Content as String: '{}', Destination: '{}', ReplyTo: '{}', CorrelationID: '{}', MessageID: '{}'", 
+						    			translationRequest, request.getJMSDestination(), request.getJMSReplyTo(), request.getJMSCorrelationID(), request.getJMSMessageID());
+						    }
 							
 						}
 					    
-					    // Extract the reply-to destination and send a response
-					    Destination replyDestination = request.getJMSReplyTo();
-	                    if (replyDestination != null) {
-	                        
-	                        // workaround as the Apache Qpid JMS API always sets JMSReplyTo as non-temporary
-	                        //String replyDestinationName = ((Destination) replyDestination).toString();
-	                        //replyDestination = new TemporaryTopic(replyDestinationName);
-
-	                        TextMessage reply = session.createTextMessage();
-	                        String translationResponse = mtService.translateEnglishToChinese(translationRequest);
-	                        reply.setText(translationResponse);
-
-	                        // Copy the correlation ID from the request to the reply if one is present, otherwise use the MessageID as an alternative
-	                        if (request.getJMSCorrelationID() == null) {
-	                        	reply.setJMSCorrelationID(request.getJMSMessageID());
-	                        }
-	                        else {
-	                        	reply.setJMSCorrelationID(request.getJMSCorrelationID());
-	                        }
-
-	                        // Send the reply
-	                        producer.send(replyDestination, reply, DeliveryMode.NON_PERSISTENT,
-	                                Message.DEFAULT_PRIORITY,
-	                                Message.DEFAULT_TIME_TO_LIVE);
-	                        
-	                        logger.info("Processed a request on destination '{}': '{}' -> '{}'", request.getJMSDestination(), translationRequest, translationResponse );
-
-	                    } else {
-	                    	// Nowhere to send the reply to!
-	                        logger.info("Ignoring a request on destination '{}' with empty reply-to field. Content: '{}', ReplyTo: '{}', CorrelationID: '{}', MessageID: '{}'",
-	                        		request.getJMSDestination(), translationRequest, request.getJMSReplyTo(), request.getJMSCorrelationID(), request.getJMSMessageID());
-	                    }
+					    // Queue the request for capture. The file writing happens off this thread.
+					    if (captureLog != null) {
+					    	captureLog.record(System.currentTimeMillis(),
+					    			request.getJMSCorrelationID() == null ? request.getJMSMessageID() : request.getJMSCorrelationID(),
+					    			translationRequest);
+					    }
+					    
+					    // Hand the rest over to a lane, picked by priority or size
+					    dispatch(request, translationRequest, mtService, fromBulkConsumer);
 					    
 					} else {
 						// Replier not coordinated as expected on message type, nothing to do.
@@ -236,31 +625,11 @@ public class TranslationReplier {
                 	
                     
                 } catch (Exception ex) {
-                    logger.error("Error occurred during processing of incoming request message: " + ex.getMessage());
+                    logger.error("Error occurred during processing of incoming request message: {}", ex.getMessage());
                 }
             }
-        });
-        
-		////////////////////////
-		// Ready to start receiving requests and process them
-		////////////////////////
-        connection.start();
-		logger.info("### Ready to process requests. Waiting for messages. ###");
-        
-        // the main thread blocks at the next statement the latch is changed elsewhere
-        try {
-			latch.await();
-		} catch (InterruptedException e) {
-			
-		}
-
-        // Stop the connection, then close the JMS with the order reversed from opening order
-        connection.stop();
-        producer.close();
-        consumer.close();
-        session.close();
-        connection.close();
-    }
+        };
+	}
 
     public static void main(String... args) throws Exception {
     	
@@ -269,8 +638,15 @@ public class TranslationReplier {
     	// Parse the program arguments.
     	Map<String,Object> parameters = parseArgs(args);
     			
+    	TranslationReplier replier = new TranslationReplier(
+    			(Integer) parameters.get("log_sample_rate"),
+    			new RequestLane("Interactive", (Integer) parameters.get("interactive_threads"), (Integer) parameters.get("lane_capacity"), (Integer) parameters.get("translation_threads")),
+    			new RequestLane("Bulk", (Integer) parameters.get("bulk_threads"), (Integer) parameters.get("lane_capacity"), (Integer) parameters.get("translation_threads")),
+    			(Integer) parameters.get("bulk_threshold"));
+    	
     	// Read the properties and setup the machine translation service
     	MachineTranslationService mtService = null;
+    	CompletableFuture<Void> mtServiceReady = CompletableFuture.completedFuture(null);
     	
     	try (InputStream input = new FileInputStream(parameters.get("alibaba_properties").toString())) {
 
@@ -279,10 +655,13 @@ public class TranslationReplier {
             // load a properties file
             prop.load(input);
  
+            // Optional property listing the language pairs to support as source:target codes
+            String languagePairs = prop.getProperty("language-pairs", MachineTranslationService.DEFAULT_LANGUAGE_PAIRS);
+            
             // Special property in the file that can also put the translation element into simulation mode...
             if (prop.containsKey("simulation-mode") && prop.getProperty("simulation-mode").equalsIgnoreCase("true")) {
+            	mtService = new MachineTranslationService(true, languagePairs);
             	logger.info("Machine Translation Service instantiated in simulation mode");
-            	mtService = new MachineTranslationService(true);
             }
             else {
          
@@ -305,10 +684,28 @@ public class TranslationReplier {
 					mtService = new MachineTranslationService(
 							prop.getProperty("service-region"), 
 							prop.getProperty("access-key-id"),
-							prop.getProperty("access-key-secret"));
+							prop.getProperty("access-key-secret"),
+							languagePairs);
+					
+					logger.info("Machine Translation Service instantiated with language pairs: {}", mtService.getLanguagePairs());
 					
-					// The instantiation will throw an error if the parameters are found to be invalid following a "self-test" request.
-					logger.info("Machine Translation Service instantiated");
+					// The self-test request will throw an error if the parameters are found to be invalid. 
+					// It is a network round trip so let it run alongside the broker connection.
+					final MachineTranslationService selfTestService = mtService;
+					mtServiceReady = CompletableFuture.runAsync(() -> {
+						try {
+							selfTestService.selfTest();
+							logger.info("Machine Translation Service self-test passed");
+						} catch (Exception e) {
+							logger.error("Error occurred during Machine Translation Service self-test (Service Region: '{}', Access Key ID: '{}', Access Key Secret: '{}'). Error message: {}", 
+			            		prop.getProperty("service-region"), 
+			            		prop.getProperty("access-key-id"),
+			            		prop.getProperty("access-key-secret"),
+			            		e.getMessage());
+							
+							System.exit(1);
+						}
+					}, replier.startupExecutor);
 					
 				} catch (Exception e) {
 					logger.error("Error occurred during Machine Translation Service instantiation (Service Region: '{}', Access Key ID: '{}', Access Key Secret: '{}'). Error message: {}", 
@@ -322,13 +719,47 @@ public class TranslationReplier {
             }
                       
         } catch (Exception e) {
-            logger.error("Error occurred while processing the properties file." + e.getMessage());
+            logger.error("Error occurred while processing the properties file. {}", e.getMessage());
             System.exit(1);
         }
     	
+    	// Requests that do not name target languages are translated from English or Chinese, so say now if either has no pair to use
+    	for (String sourceLanguage : new String[] { "en", "zh" }) {
+    		if (mtService.defaultTargetLanguage(sourceLanguage) == null) {
+    			logger.warn("No language pair configured from '{}'. Such requests will fail unless they name their target languages. Configured pairs: {}", 
+    					sourceLanguage, mtService.getLanguagePairs());
+    		}
+    	}
+    	
+    	// Open the capture file if traffic capture was asked for
+    	TrafficCaptureLog captureLog = null;
+    	
+    	if (parameters.get("capture_file") != null) {
+    		try {
+    			captureLog = new TrafficCaptureLog(parameters.get("capture_file").toString());
+    			logger.info("Capturing requests to file: {}", parameters.get("capture_file"));
+    			
+    			// Make sure buffered records are written out when the program is stopped
+    			final TrafficCaptureLog closingCaptureLog = captureLog;
+    			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+    				try {
+    					closingCaptureLog.close();
+    				} catch (Exception e) {
+    					logger.error("Error occurred while closing the capture file: {}", e.getMessage());
+    				}
+    			}));
+    		} catch (Exception e) {
+    			logger.error("Error occurred while opening the capture file: {}", e.getMessage());
+    			System.exit(1);
+    		}
+    	}
+    	
     	// Start the thread with the jndi file path and the MT Service to utilise.
-        new TranslationReplier().run(
+        replier.run(
         		parameters.get("jndi_properties").toString(),
-        		mtService);
+        		mtService,
+        		mtServiceReady,
+        		captureLog,
+        		(Boolean) parameters.get("exit_when_ready"));
     }
 }
@@ -5,20 +5,13 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
-import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
-import javax.jms.DeliveryMode;
 import javax.jms.Destination;
 import javax.jms.JMSException;
-import javax.jms.Message;
-import javax.jms.MessageConsumer;
-import javax.jms.MessageProducer;
-import javax.jms.Session;
-import javax.jms.TextMessage;
-import javax.jms.TemporaryTopic;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -37,7 +30,7 @@ import java.util.Scanner;
 
 /**
  * Sends a JMS request message with text for translation (using Apache Qpid JMS 1.1 API over AMQP 1.0) and waits for translated response messages.
- * This is the playing the Requestor role in the Request/Reply messaging pattern.
+ * This is the playing the Requestor role in the Request/Reply messaging pattern, with the messaging itself handled by TranslationClient.
  */
 
 public class TranslationRequestor {
@@ -53,7 +46,7 @@ public class TranslationRequestor {
     
     final static Logger logger = LoggerFactory.getLogger(TranslationRequestor.class);
 
-    final int REPLY_TIMEOUT_MS = 10000; // 10 seconds
+    final long REPLY_TIMEOUT_MS = 10000; // 10 seconds
     
 	/**
 	 * Use argparse4j to parse the program arguments and return a map.
@@ -77,6 +70,13 @@ public class TranslationRequestor {
 				.required(true)
 				.setDefault(DEFAULT_JNDI_FILENAME)
 				.help("JNDI Properties file to lookup Connection Factory and Topic Destination. (Was not found at default path: " + DEFAULT_JNDI_FILENAME + ")");		
+		
+		ArgumentGroup translationArgGroup = myArgParser.addArgumentGroup("Translation");
+		
+		// Optional: ask for each line in several languages at once. Without it the replier picks the direction between English and Chinese.
+		translationArgGroup.addArgument("-t", "--target-languages")
+				.required(false)
+				.help("Comma separated language codes to translate each line into, all in one request (e.g. zh,ja,fr). The replier must have these language pairs configured.");
 				
 		// Now ready to try and parse the arguments...
 		try{				
@@ -92,21 +92,14 @@ public class TranslationRequestor {
 		return parsedArgs;
 	}
     
-    private void run(String fileJNDIpath) {
+    private void run(String fileJNDIpath, String[] targetLanguages) {
 
     	Context jndiContext; 
         ConnectionFactory connectionFactory = null; 
-        Connection connection = null; 
-        Session session = null; 
         Destination destination = null;
-        TemporaryTopic replyToTopic = null;
-        MessageProducer producer = null;
-        MessageConsumer consumer = null;
-        TextMessage request = null;
-        Message reply = null;
-        String correlationId = null;
+        TranslationClient client = null;
                 
-        logger.info("Using file-based JNDI at: " + fileJNDIpath);
+        logger.info("Using file-based JNDI at: {}", fileJNDIpath);
         
         // Do the JNDI lookups
 		try {
@@ -132,47 +125,19 @@ public class TranslationRequestor {
 			System.exit(1);
 		}
 		catch (Exception e) {
-			logger.error("Error occurred during JNDI lookups: " + e.toString()); 
+			logger.error("Error occurred during JNDI lookups: {}", e.toString()); 
 			logger.error("Exiting program.");
 			System.exit(1);
 		} 
 
-		// Try connecting and creating the session
+		// Try connecting. The client sets up its own sessions, producer, temporary topic and reply consumer.
 		try {
-			// Create the connection using the factory
-			connection = connectionFactory.createConnection();
-			
-			// Create a non-transacted, auto ACK session from the connection.
-	        session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			client = new TranslationClient(connectionFactory, destination, REPLY_TIMEOUT_MS);
 
 	        logger.info("### Successfully connected session to the JMS Broker. ###");
 			
 		} catch (Exception e) {
-			logger.error("Could not connect to the JMS Broker: " + e.toString()); 
-			logger.error("Exiting program.");
-			System.exit(1);
-		}
-        
-
-        // Create the message producer, consumer, temporary topic
-        try {
-        	
-			producer = session.createProducer(null);
-			logger.info("Created the message producer.");
-			
-			// The response will be received on this temporary topic.
-	        replyToTopic = session.createTemporaryTopic();
-	        logger.info("Created the temporary topic.");
-
-	        // Create consumer for receiving the request's reply
-	        consumer = session.createConsumer(replyToTopic);
-	        logger.info("Created the message consumer.");
-
-	        // Start receiving replies
-	        connection.start();
-			
-		} catch (JMSException e) {
-			logger.error("Could not setup producer and consumer objects: " + e.toString()); 
+			logger.error("Could not connect to the JMS Broker: {}", e.toString()); 
 			logger.error("Exiting program.");
 			System.exit(1);
 		}
@@ -199,84 +164,39 @@ public class TranslationRequestor {
             	continue;
             }
             
+            logger.debug("Sending request '{}' to destination '{}'...", line, destination);
             
-            // (1) Create and send the request.        
-            try {
-    			request = session.createTextMessage(line);
-    			
-    			// The application must put the destination of the reply in the replyTo field of the request
-    	        request.setJMSReplyTo(replyToTopic);
-    	        
-    	        // The application must put a correlation ID in the request
-    	        correlationId = UUID.randomUUID().toString();
-    	        request.setJMSCorrelationID(correlationId);
-
-    	        logger.debug("Sending request '" + request.getText() + "' to destination '" + destination.toString() + "'...");
-
-    	        // Send the request
-    	        producer.send(destination, request, 
-    	        		DeliveryMode.NON_PERSISTENT,
-    	                Message.DEFAULT_PRIORITY,
-    	                Message.DEFAULT_TIME_TO_LIVE);
-
-    	        logger.debug("Sent successfully. Waiting for reply...");
-    				
-    		} catch (JMSException e) {
-    			logger.error("Error occurred during request message sending: " + e.toString()); 
-    			logger.error("Exiting program.");
-    			System.exit(1);
-    		}
-            
-            
-            // (2) Try to receive the response. 
-            // Notes: 
-            //	Synchronous, blocking call to receive in this program since it is processing requests in a very simple sequence without out-of-order response handling logic
-            //	Receiver side program can be asynch with callbacks to respond to requests from multiple senders in any order
+            // Lines are still translated one at a time here, so just wait on each reply before reading the next line
             try {
+            	if (targetLanguages == null) {
+            		translationResponse = client.translate(line).get();
+            		logger.debug("TextMessage response received: '{}'", translationResponse);
+            	}
+            	else {
+            		Map<String,String> translations = client.translateTo(line, targetLanguages).get();
+            		logger.debug("MapMessage response received: '{}'", translations);
+            		
+            		// One column per target language, marking any that did not come back
+            		StringBuilder columns = new StringBuilder();
+            		for (String targetLanguage : targetLanguages) {
+            			columns.append(columns.length() == 0 ? "" : "\t").append(targetLanguage).append(": ")
+            				.append(translations.containsKey(targetLanguage) ? translations.get(targetLanguage) : "[No translation response.]");
+            		}
+            		translationResponse = columns.toString();
+            	}
             	
-    			// the main thread blocks at the next statement until a message received or the timeout occurs
-    			reply = consumer.receive(REPLY_TIMEOUT_MS);
-
-    			// Did anything arrive?
-    			if (reply == null) {
-    				translationResponse = "[No translation response. Timed Out.]";
-    			    logger.debug("Failed to receive a reply in " + REPLY_TIMEOUT_MS + " msecs");
-    			}
-    			// Expected correlation ID is present?
-    			else if (reply.getJMSCorrelationID() == null) {
-    				// May be a malformed response from the replier
-    				translationResponse = "[No translation response. Missing ID.]";
-    			    logger.debug("Received a reply message with no correlationID. This field is needed for a direct request.");
-    			}
-    			else
-    			{
-    				// All good to try and process it...
-    				
-    				// Apache Qpid JMS prefixes correlation ID with string "ID:" so remove such prefix for interoperability across JMS providers
-    				if (!reply.getJMSCorrelationID().replaceAll("ID:", "").equals(correlationId)) {
-    					// May be a stray or delayed response that is no longer useful
-    					translationResponse = "[No translation response. Mismatched ID.]";
-    				    logger.debug("Received invalid correlationID in reply message. Expecting {} and got {}", correlationId, reply.getJMSCorrelationID());
-    				}
-    				else
-    				{
-    					// Check if the expected type of message was received
-    					if (reply instanceof TextMessage) {
-    						translationResponse = ((TextMessage) reply).getText();
-    					    logger.debug("TextMessage response received: '" + ((TextMessage) reply).getText() + "'");
-    					} else {
-    						// Replier not coordinated as expected on message type
-    						translationResponse = "[No translation response. Incorrect type.]";
-    					    logger.debug("Message response received but not expected TextMessage type.");
-    					}
-    				}
-    			}
-    			
-    		} catch (JMSException e) {
-    			logger.error("Error occurred during reply message receive: " + e.toString()); 
-    			logger.error("Exiting program.");
-    			System.exit(1);
-    		}     
+            } catch (ExecutionException e) {
+            	if (e.getCause() instanceof TimeoutException) {
+            		translationResponse = "[No translation response. Timed Out.]";
+            		logger.debug("Failed to receive a reply in {} msecs", REPLY_TIMEOUT_MS);
+            	}
+            	else {
+            		translationResponse = "[No translation response. " + e.getCause().getMessage() + "]";
+            		logger.debug("Request failed: {}", e.getCause().toString());
+            	}
+            } catch (InterruptedException e) {
+            	break;
+            }
             
             // This output goes to stdout?
             System.out.printf("%s\t->\t%s\n", line, translationResponse);
@@ -290,14 +210,9 @@ public class TranslationRequestor {
 			// Close the input scanner
 			in.close();
 			
-			// Stop the connection, then close the JMS with the order reversed from opening order
-			connection.stop();
-			consumer.close();
-			producer.close();
-			session.close();
-			connection.close();
+			client.close();
 		} catch (JMSException e) {
-			logger.error("Error occurred during the shutdown process: " + e.toString()); 
+			logger.error("Error occurred during the shutdown process: {}", e.toString()); 
 			logger.error("Exiting program.");
 			System.exit(1);
 		}
@@ -308,13 +223,14 @@ public class TranslationRequestor {
     public static void main(String... args) throws Exception {
     	
         
-    	// Parse the program arguments. (Just one arg at the moment but structure is there for future development.)
+    	// Parse the program arguments.
     	Map<String,Object> parameters = parseArgs(args);
     	
         logger.info("###### Translation Requestor Program Started ######");
 
     	// Start the thread with the collected parameters
         new TranslationRequestor().run(
-        		parameters.get("jndi_properties").toString());
+        		parameters.get("jndi_properties").toString(),
+        		parameters.get("target_languages") == null ? null : parameters.get("target_languages").toString().split("\\s*,\\s*"));
     }
 }
@@ -0,0 +1,51 @@
+package com.itsJamilAhmed.samples.alibaba.nlp;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.itsJamilAhmed.samples.alibaba.nlp.LanguageDetector.Language;
+
+public class LanguageDetectorTest {
+
+	@Test
+	public void plainEnglishAndChinese() {
+		assertEquals(Language.ENGLISH, LanguageDetector.detect("Hello world"));
+		assertEquals(Language.ENGLISH, LanguageDetector.detect("Café crème"));
+		assertEquals(Language.CHINESE, LanguageDetector.detect("你好世界"));
+		assertEquals(Language.CHINESE, LanguageDetector.detect("好"));
+	}
+
+	@Test
+	public void noLettersIsNone() {
+		assertEquals(Language.NONE, LanguageDetector.detect(""));
+		assertEquals(Language.NONE, LanguageDetector.detect("   "));
+		assertEquals(Language.NONE, LanguageDetector.detect("12345 !?"));
+		assertEquals(Language.NONE, LanguageDetector.detect("3.14 + 2 = 5.14 :-)"));
+	}
+
+	@Test
+	public void otherScriptsAreLeftToTheService() {
+		assertEquals(Language.OTHER, LanguageDetector.detect("こんにちは"));
+		assertEquals(Language.OTHER, LanguageDetector.detect("안녕하세요"));
+		assertEquals(Language.OTHER, LanguageDetector.detect("Привет мир"));
+	}
+
+	@Test
+	public void kanjiWithKanaIsJapanese() {
+		assertEquals(Language.OTHER, LanguageDetector.detect("日本語を勉強します"));
+	}
+
+	@Test
+	public void mixedTextGoesByWordCount() {
+		// Chinese text with a Latin name or brand in it: a tie goes to Chinese
+		assertEquals(Language.CHINESE, LanguageDetector.detect("iPhone 手机"));
+		assertEquals(Language.CHINESE, LanguageDetector.detect("第一 iPhone"));
+		assertEquals(Language.CHINESE, LanguageDetector.detect("北京 Beijing"));
+		assertEquals(Language.CHINESE, LanguageDetector.detect("你好 ok"));
+		assertEquals(Language.CHINESE, LanguageDetector.detect("我今天想去北京看看天安门 iPhone"));
+		// English text with a Chinese word in it
+		assertEquals(Language.ENGLISH, LanguageDetector.detect("How do you say 你好 in English"));
+		assertEquals(Language.ENGLISH, LanguageDetector.detect("The 长城 is very long"));
+	}
+}
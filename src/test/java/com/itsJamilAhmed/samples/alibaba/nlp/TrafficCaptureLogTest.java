@@ -0,0 +1,87 @@
+package com.itsJamilAhmed.samples.alibaba.nlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.itsJamilAhmed.samples.alibaba.nlp.TrafficCaptureLog.CapturedRequest;
+
+public class TrafficCaptureLogTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private String capture(String... texts) throws Exception {
+		String path = new File(folder.getRoot(), "capture.bin").getPath();
+		try (TrafficCaptureLog captureLog = new TrafficCaptureLog(path)) {
+			for (int i = 0; i < texts.length; i++) {
+				captureLog.record(1000 + i, "ID-" + i, texts[i]);
+			}
+		}
+		return path;
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		List<CapturedRequest> requests = TrafficCaptureLog.readAll(capture("Hello world", "你好世界", ""));
+
+		assertEquals(3, requests.size());
+		assertEquals(1000, requests.get(0).timestamp);
+		assertEquals("ID-0", requests.get(0).correlationId);
+		assertEquals("Hello world", requests.get(0).text);
+		assertEquals("你好世界", requests.get(1).text);
+		assertEquals("", requests.get(2).text);
+	}
+
+	@Test
+	public void tornLastRecordIsLeftOut() throws Exception {
+		String path = capture("first", "second", "third");
+		try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+			file.setLength(file.length() - 2);
+		}
+
+		List<CapturedRequest> requests = TrafficCaptureLog.readAll(path);
+
+		assertEquals(2, requests.size());
+		assertEquals("second", requests.get(1).text);
+	}
+
+	@Test
+	public void nullTextIsCapturedAsEmpty() throws Exception {
+		List<CapturedRequest> requests = TrafficCaptureLog.readAll(capture("first", null, "third"));
+
+		assertEquals(3, requests.size());
+		assertEquals("", requests.get(1).text);
+		assertEquals("third", requests.get(2).text);
+	}
+
+	@Test
+	public void overLongCorrelationIdIsCutOnACharacterBoundary() throws Exception {
+		StringBuilder correlationId = new StringBuilder();
+		for (int i = 0; i < 40000; i++) {
+			// Two bytes each in UTF-8, so the 65535 byte limit falls in the middle of one
+			correlationId.append('é');
+		}
+		String path = new File(folder.getRoot(), "capture.bin").getPath();
+		try (TrafficCaptureLog captureLog = new TrafficCaptureLog(path)) {
+			captureLog.record(1000, correlationId.toString(), "text");
+		}
+
+		List<CapturedRequest> requests = TrafficCaptureLog.readAll(path);
+
+		assertEquals(1, requests.size());
+		String captured = requests.get(0).correlationId;
+		assertTrue(correlationId.toString().startsWith(captured));
+		assertTrue(captured.getBytes(StandardCharsets.UTF_8).length <= 0xFFFF);
+		assertEquals(32767, captured.length());
+		assertEquals("text", requests.get(0).text);
+	}
+}